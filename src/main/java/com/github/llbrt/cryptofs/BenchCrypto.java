@@ -0,0 +1,274 @@
+package com.github.llbrt.cryptofs;
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.cryptomator.cryptolib.api.Cryptor;
+import org.cryptomator.cryptolib.api.CryptorProvider;
+import org.cryptomator.cryptolib.api.CryptorProvider.Scheme;
+import org.cryptomator.cryptolib.api.FileContentCryptor;
+import org.cryptomator.cryptolib.api.FileHeader;
+import org.cryptomator.cryptolib.api.FileHeaderCryptor;
+import org.cryptomator.cryptolib.api.Masterkey;
+
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Model.CommandSpec;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.ParameterException;
+import picocli.CommandLine.Spec;
+
+/**
+ * Measures the throughput of the cipher combos on the local CPU.
+ * <p>
+ * Each measure encrypts then decrypts files of a given number of chunks, header included, with a given number of
+ * threads. All the cipher combos are warmed up before the first measure, then measured in turn several times: the best
+ * measures are printed, they do not depend on the order of the cipher combos.
+ */
+@Command(name = "bench-crypto", description = "Measures the throughput of the cipher combos available for a new vault")
+public final class BenchCrypto implements Callable<Integer> {
+
+	public static final String NAME = "bench-crypto";
+
+	private static final int MB = 1024 * 1024;
+	// Data encrypted and decrypted per measure during the warm-up
+	private static final long WARM_UP_BYTES = 4 * MB;
+
+	@Option(names = { "--megabytes" }, description = "Amount of data encrypted and decrypted per measure, in MB (default: ${DEFAULT-VALUE})", defaultValue = "64")
+	private int megabytes;
+
+	@Option(names = { "--chunks" }, split = ",", description = "Sizes of the files, in chunks (default: ${DEFAULT-VALUE})", defaultValue = "1,32,1024")
+	private int[] chunkCounts;
+
+	@Option(names = { "--threads" }, split = ",", description = "Numbers of threads (default: 1 and the number of processors)")
+	private int[] threadCounts;
+
+	@Option(names = { "--warm-up" }, description = "Time spent encrypting and decrypting before the measures, in seconds (default: ${DEFAULT-VALUE})", defaultValue = "3")
+	private int warmUpSeconds;
+
+	@Option(names = { "--repeats" }, description = "Number of times each measure is done, the best one is printed (default: ${DEFAULT-VALUE})", defaultValue = "3")
+	private int repeats;
+
+	@Spec
+	private CommandSpec spec;
+
+	private final SecureRandom random = new SecureRandom();
+
+	@Override
+	public Integer call() throws Exception {
+		if (megabytes <= 0) {
+			throw new ParameterException(spec.commandLine(), "Invalid amount of data");
+		}
+		for (int chunkCount : chunkCounts) {
+			if (chunkCount <= 0) {
+				throw new ParameterException(spec.commandLine(), "Invalid number of chunks");
+			}
+		}
+		if (threadCounts == null) {
+			int processors = Runtime.getRuntime().availableProcessors();
+			threadCounts = processors > 1 ? new int[] { 1, processors } : new int[] { 1 };
+		}
+		for (int threadCount : threadCounts) {
+			if (threadCount <= 0) {
+				throw new ParameterException(spec.commandLine(), "Invalid number of threads");
+			}
+		}
+		if (warmUpSeconds < 0) {
+			throw new ParameterException(spec.commandLine(), "Invalid warm-up time");
+		}
+		if (repeats <= 0) {
+			throw new ParameterException(spec.commandLine(), "Invalid number of repeats");
+		}
+
+		List<Config> configs = new ArrayList<>();
+		for (int chunkCount : chunkCounts) {
+			for (int threadCount : threadCounts) {
+				configs.add(new Config(chunkCount, threadCount));
+			}
+		}
+		Map<Scheme, Throughput[]> best = new EnumMap<>(Scheme.class);
+		Map<Scheme, Cryptor> cryptors = new EnumMap<>(Scheme.class);
+		try {
+			for (Scheme scheme : Scheme.values()) {
+				cryptors.put(scheme, newCryptor(scheme));
+				best.put(scheme, new Throughput[configs.size()]);
+			}
+			warmUp(cryptors.values(), configs);
+			// The cipher combos are measured in turn, the best measure is kept
+			for (int r = 0; r < repeats; r++) {
+				for (Map.Entry<Scheme, Cryptor> cryptor : cryptors.entrySet()) {
+					Throughput[] measures = best.get(cryptor.getKey());
+					for (int i = 0; i < configs.size(); i++) {
+						Config config = configs.get(i);
+						Throughput throughput = measure(cryptor.getValue(), config.chunkCount(), config.threadCount(), (long) megabytes * MB);
+						measures[i] = measures[i] == null ? throughput : measures[i].max(throughput);
+					}
+				}
+			}
+		} finally {
+			cryptors.values().forEach(Cryptor::close);
+		}
+
+		System.out.printf("%-12s %8s %8s %14s %14s%n", "Cipher", "Chunks", "Threads", "Encrypt MB/s", "Decrypt MB/s");
+		Map<Scheme, Double> scores = new EnumMap<>(Scheme.class);
+		for (Map.Entry<Scheme, Throughput[]> measures : best.entrySet()) {
+			double logSum = 0;
+			for (int i = 0; i < configs.size(); i++) {
+				Config config = configs.get(i);
+				Throughput throughput = measures.getValue()[i];
+				System.out.printf("%-12s %8d %8d %14.1f %14.1f%n", measures.getKey(), config.chunkCount(), config.threadCount(), throughput.encrypt(), throughput.decrypt());
+				logSum += Math.log(throughput.encrypt()) + Math.log(throughput.decrypt());
+			}
+			scores.put(measures.getKey(), Math.exp(logSum / (2 * configs.size())));
+		}
+
+		Scheme fastest = null;
+		for (Map.Entry<Scheme, Double> score : scores.entrySet()) {
+			if (fastest == null || score.getValue() > scores.get(fastest)) {
+				fastest = score.getKey();
+			}
+		}
+		System.out.println();
+		System.out.println("Recommended: --cipher " + fastest);
+		return 0;
+	}
+
+	private Cryptor newCryptor(Scheme scheme) {
+		// The key is destroyed with the cryptor
+		return CryptorProvider.forScheme(scheme).provide(Masterkey.generate(random), random);
+	}
+
+	/**
+	 * Runs all the measures of all the cipher combos on small amounts of data for the warm-up time, once at least.
+	 */
+	private void warmUp(Collection<Cryptor> cryptors, List<Config> configs) throws Exception {
+		long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmUpSeconds);
+		do {
+			for (Cryptor cryptor : cryptors) {
+				for (Config config : configs) {
+					measure(cryptor, config.chunkCount(), config.threadCount(), WARM_UP_BYTES);
+				}
+			}
+		} while (System.nanoTime() < end);
+	}
+
+	/**
+	 * @return the throughput in MB/s of the cleartext data
+	 */
+	private static Throughput measure(Cryptor cryptor, int chunkCount, int threadCount, long bytes) throws Exception {
+		FileContentCryptor contentCryptor = cryptor.fileContentCryptor();
+		long fileSize = (long) chunkCount * contentCryptor.cleartextChunkSize();
+		long files = Math.max(threadCount, bytes / fileSize);
+		long filesPerThread = files / threadCount;
+		double measuredBytes = (double) filesPerThread * threadCount * fileSize;
+
+		ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+		try {
+			List<Worker> workers = new ArrayList<>();
+			for (int t = 0; t < threadCount; t++) {
+				workers.add(new Worker(cryptor, chunkCount));
+			}
+			long encryptTime = run(executor, workers, worker -> worker.encrypt(filesPerThread));
+			long decryptTime = run(executor, workers, worker -> worker.decrypt(filesPerThread));
+			return new Throughput(measuredBytes * 1e9 / MB / encryptTime, measuredBytes * 1e9 / MB / decryptTime);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * @return the elapsed time in nanoseconds
+	 */
+	private static long run(ExecutorService executor, List<Worker> workers, WorkerTask task) throws Exception {
+		List<Future<?>> futures = new ArrayList<>();
+		long start = System.nanoTime();
+		for (Worker worker : workers) {
+			futures.add(executor.submit(() -> {
+				task.run(worker);
+				return null;
+			}));
+		}
+		for (Future<?> future : futures) {
+			future.get();
+		}
+		return Math.max(1, System.nanoTime() - start);
+	}
+
+	@FunctionalInterface
+	private interface WorkerTask {
+		void run(Worker worker) throws Exception;
+	}
+
+	private record Config(int chunkCount, int threadCount) {
+	}
+
+	private record Throughput(double encrypt, double decrypt) {
+
+		Throughput max(Throughput other) {
+			return new Throughput(Math.max(encrypt, other.encrypt), Math.max(decrypt, other.decrypt));
+		}
+	}
+
+	/**
+	 * Encrypts and decrypts files of one thread.
+	 */
+	private static final class Worker {
+		private final FileHeaderCryptor headerCryptor;
+		private final FileContentCryptor contentCryptor;
+		private final int chunkCount;
+		private final ByteBuffer cleartextChunk;
+		private final ByteBuffer ciphertextChunk;
+		private final ByteBuffer[] encryptedChunks;
+		private ByteBuffer encryptedHeader;
+
+		Worker(Cryptor cryptor, int chunkCount) {
+			this.headerCryptor = cryptor.fileHeaderCryptor();
+			this.contentCryptor = cryptor.fileContentCryptor();
+			this.chunkCount = chunkCount;
+			this.cleartextChunk = ByteBuffer.allocate(contentCryptor.cleartextChunkSize());
+			this.ciphertextChunk = ByteBuffer.allocate(contentCryptor.ciphertextChunkSize());
+			// Allocated before the measure, the first file is encrypted in them
+			this.encryptedChunks = new ByteBuffer[chunkCount];
+			for (int c = 0; c < chunkCount; c++) {
+				encryptedChunks[c] = ByteBuffer.allocate(contentCryptor.ciphertextChunkSize());
+			}
+		}
+
+		void encrypt(long files) {
+			for (long f = 0; f < files; f++) {
+				FileHeader header = headerCryptor.create();
+				ByteBuffer ciphertextHeader = headerCryptor.encryptHeader(header);
+				if (f == 0) {
+					// Kept to be decrypted, with the chunks of the same file
+					encryptedHeader = ciphertextHeader;
+				}
+				for (int c = 0; c < chunkCount; c++) {
+					ByteBuffer ciphertext = f == 0 ? encryptedChunks[c] : ciphertextChunk;
+					cleartextChunk.clear();
+					ciphertext.clear();
+					contentCryptor.encryptChunk(cleartextChunk, ciphertext, c, header);
+					ciphertext.flip();
+				}
+			}
+		}
+
+		void decrypt(long files) throws Exception {
+			for (long f = 0; f < files; f++) {
+				FileHeader header = headerCryptor.decryptHeader(encryptedHeader.duplicate());
+				for (int c = 0; c < chunkCount; c++) {
+					cleartextChunk.clear();
+					contentCryptor.decryptChunk(encryptedChunks[c].duplicate(), cleartextChunk, c, header, true);
+				}
+			}
+		}
+	}
+}
@@ -1,6 +1,10 @@
 package com.github.llbrt.cryptofs;
 
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -11,7 +15,18 @@ public final class CryFsMount {
 
 	private static final Logger logger = LoggerFactory.getLogger(CryFsMount.class);
 
+	// Commands run instead of the mount when named by the first argument: a vault directory with the name of a
+	// command is mounted with a path such as ./du, or with an option first
+	private static final Map<String, Supplier<Callable<Integer>>> TOOLS = Map.of(
+			BenchCrypto.NAME, BenchCrypto::new,
+			DiskUsage.NAME, DiskUsage::new);
+
 	public static void main(String[] args) {
+		if (args.length > 0 && TOOLS.containsKey(args[0])) {
+			CommandLine tool = new CommandLine(TOOLS.get(args[0]).get());
+			System.exit(tool.execute(Arrays.copyOfRange(args, 1, args.length)));
+		}
+
 		CommandLine cmd = new CommandLine(new Mount());
 		int exitCode = cmd.execute(args);
 		if (exitCode != 0) {
@@ -0,0 +1,100 @@
+package com.github.llbrt.cryptofs;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+
+import org.cryptomator.cryptofs.CryptoFileSystem;
+import org.cryptomator.cryptolib.api.Cryptor;
+import org.cryptomator.cryptolib.api.Masterkey;
+
+import com.github.llbrt.cryptofs.fuse.FuseCryptoFs;
+import com.github.llbrt.cryptofs.stats.VaultUsage;
+import com.github.llbrt.cryptofs.stats.VaultUsage.Usage;
+
+import picocli.CommandLine.ArgGroup;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Model.CommandSpec;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.ParameterException;
+import picocli.CommandLine.Parameters;
+import picocli.CommandLine.Spec;
+
+/**
+ * Prints the disk usage of the directories of a vault, without mounting it.
+ */
+@Command(name = "du", description = "Prints the disk usage of the directories of a vault, computed from the ciphertext files")
+public final class DiskUsage implements Callable<Integer> {
+
+	public static final String NAME = "du";
+
+	private static final String UNITS = "KMGTPE";
+
+	@ArgGroup(exclusive = true, multiplicity = "1")
+	private Mount.Passphrase passphrase;
+
+	@Option(names = { "-d", "--depth" }, description = "Depth of the directories printed, 0 for the root only (default: ${DEFAULT-VALUE})", defaultValue = "1")
+	private int depth;
+
+	@Option(names = { "--threads" }, description = "Number of directories read at the same time (default: twice the number of processors)")
+	private Integer threads;
+
+	@Option(names = { "-h", "--human-readable" }, description = "Prints the sizes in K, M, G...")
+	private boolean humanReadable;
+
+	@Option(names = { "--ciphertext" }, description = "Prints the sizes of the ciphertext files")
+	private boolean ciphertext;
+
+	@Parameters(index = "0", description = "Path to the vault")
+	private Path vaultDir;
+
+	@Spec
+	private CommandSpec spec;
+
+	@Override
+	public Integer call() throws Exception {
+		if (depth < 0) {
+			throw new ParameterException(spec.commandLine(), "Invalid depth");
+		}
+		if (threads == null) {
+			threads = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+		} else if (threads <= 0) {
+			throw new ParameterException(spec.commandLine(), "Invalid number of threads");
+		}
+		if (!Files.isDirectory(vaultDir)) {
+			throw new ParameterException(spec.commandLine(), "Vault directory not found");
+		}
+
+		var options = FuseCryptoFs.mountOptions(vaultDir, passphrase.read(spec)).readOnly();
+		// The key is derived from the passphrase once for the vault and the cryptor
+		try (Masterkey masterkey = options.loadMasterkey();
+				CryptoFileSystem fs = options.open(masterkey);
+				Cryptor cryptor = options.openCryptor(masterkey)) {
+			print(new VaultUsage(fs, cryptor, depth).compute(threads));
+		}
+		return 0;
+	}
+
+	// Sub-directories first, as du
+	private void print(Usage usage) {
+		for (Usage child : usage.children()) {
+			print(child);
+		}
+		long size = ciphertext ? usage.ciphertextSize() : usage.size();
+		System.out.printf("%s\t%d\t%s%n", humanReadable ? humanReadable(size) : Long.toString(size), usage.files(),
+				usage.path());
+	}
+
+	private static String humanReadable(long size) {
+		if (size < 1024) {
+			return Long.toString(size);
+		}
+		int unit = -1;
+		double value = size;
+		while (value >= 1024 && unit < UNITS.length() - 1) {
+			value /= 1024;
+			unit++;
+		}
+		return String.format(value < 10 ? "%.1f%c" : "%.0f%c", value, UNITS.charAt(unit));
+	}
+}
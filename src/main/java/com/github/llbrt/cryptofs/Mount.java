@@ -1,9 +1,12 @@
 package com.github.llbrt.cryptofs;
 
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.concurrent.Callable;
 
+import org.cryptomator.cryptolib.api.CryptorProvider;
+
 import com.github.llbrt.cryptofs.fuse.FuseCryptoFs;
 import com.github.llbrt.cryptofs.fuse.FuseCryptoFs.MountOptions;
 
@@ -30,14 +33,36 @@ public final class Mount implements Callable<MountedFs> {
 
 		@Option(names = { "-p", "--passphrase" }, interactive = true)
 		private char[] passphrase;
+
+		char[] read(CommandSpec spec) throws IOException {
+			if (passphrase != null) {
+				return passphrase;
+			} else if (passphraseEnvironmentVariable != null) {
+				String vaultPass = System.getenv(passphraseEnvironmentVariable);
+				return vaultPass.toCharArray();
+			} else if (passphrasePath != null) {
+				String vaultPass = new String(Files.readAllBytes(passphrasePath));
+				return vaultPass.toCharArray();
+			} else {
+				throw new ParameterException(spec.commandLine(), "Password required");
+			}
+		}
 	}
 
 	@Option(names = { "-c", "--create", "--initialize" }, description = "Creates a new vault")
 	private boolean initializeVault;
+	@Option(names = { "--cipher" }, description = "Cipher combo of the new vault: ${COMPLETION-CANDIDATES} (default: SIV_CTRMAC), see the command " + BenchCrypto.NAME)
+	private CryptorProvider.Scheme cipherCombo;
 	@Option(names = { "-m" }, description = "Migrates the vault if necessary")
 	private boolean migrateFs;
 	@Option(names = { "-r", "--read-only" }, description = "Mounts the vault read-only")
 	private boolean readOnly;
+	@Option(names = { "--io-slots" }, description = "Number of operations executed at the same time, metadata first (default: 0, operations not scheduled)")
+	private Integer ioSlots;
+	@Option(names = { "--bulk-rate" }, description = "Maximum rate of the bulk transfers, in MB/s, with --io-slots")
+	private Integer bulkRate;
+	@Option(names = { "--open-files" }, description = "Number of closed files kept open to be reopened quickly (default: 0, files closed)")
+	private Integer openFiles;
 
 	@Parameters(index = "0", description = "Path to the vault")
 	private Path vaultDir;
@@ -50,17 +75,10 @@ public final class Mount implements Callable<MountedFs> {
 
 	@Override
 	public MountedFs call() throws Exception {
-		char[] vaultPassphrase;
-		if (passphrase.passphrase != null) {
-			vaultPassphrase = passphrase.passphrase;
-		} else if (passphrase.passphraseEnvironmentVariable != null) {
-			String vaultPass = System.getenv(passphrase.passphraseEnvironmentVariable);
-			vaultPassphrase = vaultPass.toCharArray();
-		} else if (passphrase.passphrasePath != null) {
-			String vaultPass = new String(Files.readAllBytes(passphrase.passphrasePath));
-			vaultPassphrase = vaultPass.toCharArray();
-		} else {
-			throw new ParameterException(spec.commandLine(), "Password required");
+		char[] vaultPassphrase = passphrase.read(spec);
+
+		if (cipherCombo != null && !initializeVault) {
+			throw new ParameterException(spec.commandLine(), "Cipher combo only set on creation");
 		}
 
 		// Vault must exist and not be empty except on initialization
@@ -75,10 +93,33 @@ public final class Mount implements Callable<MountedFs> {
 				.mountPoint(mountPoint);
 		if (initializeVault)
 			mo.initializeVault();
+		if (cipherCombo != null)
+			mo.cipherCombo(cipherCombo);
 		if (migrateFs)
 			mo.migrateFs();
 		if (readOnly)
 			mo.readOnly();
+		if (ioSlots != null) {
+			if (ioSlots < 0) {
+				throw new ParameterException(spec.commandLine(), "Invalid number of I/O slots");
+			}
+			mo.ioSlots(ioSlots);
+		}
+		if (bulkRate != null) {
+			if (bulkRate <= 0) {
+				throw new ParameterException(spec.commandLine(), "Invalid bulk rate");
+			}
+			if (ioSlots == null || ioSlots == 0) {
+				throw new ParameterException(spec.commandLine(), "Bulk rate only set with I/O slots");
+			}
+			mo.bulkRate(bulkRate * 1024L * 1024L);
+		}
+		if (openFiles != null) {
+			if (openFiles < 0) {
+				throw new ParameterException(spec.commandLine(), "Invalid number of open files");
+			}
+			mo.openFiles(openFiles);
+		}
 
 		return mo.mount();
 	}
@@ -9,6 +9,7 @@ import java.io.IOException;
 import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.util.ArrayList;
@@ -19,11 +20,15 @@ import org.cryptomator.cryptofs.CryptoFileSystem;
 import org.cryptomator.cryptofs.CryptoFileSystemProperties;
 import org.cryptomator.cryptofs.CryptoFileSystemProperties.FileSystemFlags;
 import org.cryptomator.cryptofs.CryptoFileSystemProvider;
+import org.cryptomator.cryptofs.VaultConfig;
+import org.cryptomator.cryptofs.VaultConfig.UnverifiedVaultConfig;
+import org.cryptomator.cryptofs.common.Constants;
 import org.cryptomator.cryptofs.migration.Migrators;
 import org.cryptomator.cryptofs.migration.api.MigrationContinuationListener.ContinuationEvent;
 import org.cryptomator.cryptofs.migration.api.MigrationContinuationListener.ContinuationResult;
 import org.cryptomator.cryptofs.migration.api.MigrationProgressListener.ProgressState;
 import org.cryptomator.cryptolib.api.CryptoException;
+import org.cryptomator.cryptolib.api.Cryptor;
 import org.cryptomator.cryptolib.api.CryptorProvider;
 import org.cryptomator.cryptolib.api.Masterkey;
 import org.cryptomator.cryptolib.api.MasterkeyLoader;
@@ -36,6 +41,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.github.llbrt.cryptofs.MountedFs;
+import com.github.llbrt.cryptofs.nio.LayeredFileSystem;
+import com.github.llbrt.cryptofs.nio.LayeredFileSystem.StorageProbe;
 import com.google.common.base.Preconditions;
 
 public final class FuseCryptoFs implements MountedFs {
@@ -70,12 +77,16 @@ public final class FuseCryptoFs implements MountedFs {
 		masterkeyFileAccess = new MasterkeyFileAccess(EMPTY_ARRAY, secureRandom);
 	}
 
+	private static final CryptorProvider.Scheme DEFAULT_CIPHER_COMBO = CryptorProvider.Scheme.SIV_CTRMAC;
+
 	private final CryptoFileSystem fs;
+	private final LayeredFileSystem layeredFs;
 	private final Mount mount;
 	private final Path mountPoint;
 
-	private FuseCryptoFs(CryptoFileSystem fs, Mount mount, Path mountPoint) {
+	private FuseCryptoFs(CryptoFileSystem fs, LayeredFileSystem layeredFs, Mount mount, Path mountPoint) {
 		this.fs = fs;
+		this.layeredFs = layeredFs;
 		this.mount = mount;
 		this.mountPoint = mountPoint;
 	}
@@ -107,6 +118,11 @@ public final class FuseCryptoFs implements MountedFs {
 			} catch (Exception e) {
 				log.warn("close failed", e);
 			}
+			try {
+				layeredFs.close();
+			} catch (Exception e) {
+				log.warn("close of layers failed", e);
+			}
 		}
 		log.info("umount done");
 	}
@@ -153,18 +169,35 @@ public final class FuseCryptoFs implements MountedFs {
 	}
 
 	public static MountedFs mount(CryptoFileSystem fs, Path mountPoint) {
+		return mount(fs, mountPoint, LayeredFileSystem.layer(fs));
+	}
+
+	public static MountedFs mount(CryptoFileSystem fs, Path mountPoint, LayeredFileSystem.Builder layers) {
+		LayeredFileSystem layeredFs = layers.build();
 		try {
 			var mountService = MountService.get().findAny().orElseThrow(() -> new MountFailedException("No mount provider found: fuse3 is required"));
-			var rootPath = fs.getRootDirectories().iterator().next();
-			var builder = mountService.forFileSystem(rootPath)
+			var builder = mountService.forFileSystem(layeredFs.getRoot())
 					.setMountpoint(mountPoint)
 					.setMountFlags(mountService.getDefaultMountFlags());
-			return new FuseCryptoFs(fs, builder.mount(), mountPoint);
+			return new FuseCryptoFs(fs, layeredFs, builder.mount(), mountPoint);
 		} catch (MountFailedException e) {
+			try {
+				layeredFs.close();
+			} catch (IOException e1) {
+				log.warn("close of layers failed", e1);
+			}
 			throw new RuntimeException(e);
 		}
 	}
 
+	/**
+	 * @return the probe reading the attributes of the ciphertext files, changed when a file is changed outside the
+	 *         mount point
+	 */
+	private static StorageProbe ciphertextProbe(CryptoFileSystem fs) {
+		return file -> Files.readAttributes(fs.getCiphertextPath(file), BasicFileAttributes.class);
+	}
+
 	public static MountOptions mountOptions(Path vaultDir, char[] vaultPassphrase) {
 		return new MountOptions(vaultDir, new String(vaultPassphrase));
 	}
@@ -176,6 +209,12 @@ public final class FuseCryptoFs implements MountedFs {
 		private boolean initializeVault;
 		private boolean migrateFs;
 		private boolean readOnly;
+		// The scheduler limits the concurrency of all the operations: enabled on request only
+		private int ioSlots;
+		private long bulkRate;
+		// A file changed outside the mount is seen once its idle channels are closed: enabled on request only
+		private int openFiles;
+		private CryptorProvider.Scheme cipherCombo = DEFAULT_CIPHER_COMBO;
 
 		MountOptions(Path vaultDir, String passphrase) {
 			this.vaultDir = vaultDir;
@@ -202,6 +241,38 @@ public final class FuseCryptoFs implements MountedFs {
 			return this;
 		}
 
+		/**
+		 * Sets the cipher combo of the vault created by {@link #initializeVault()}.
+		 */
+		public final MountOptions cipherCombo(CryptorProvider.Scheme cipherCombo) {
+			this.cipherCombo = Objects.requireNonNull(cipherCombo);
+			return this;
+		}
+
+		/**
+		 * Sets the number of operations executed at the same time by the scheduler, 0 to not schedule the operations.
+		 */
+		public final MountOptions ioSlots(int ioSlots) {
+			this.ioSlots = ioSlots;
+			return this;
+		}
+
+		/**
+		 * Limits the rate of the bulk transfers in bytes per second, 0 if unlimited.
+		 */
+		public final MountOptions bulkRate(long bytesPerSecond) {
+			this.bulkRate = bytesPerSecond;
+			return this;
+		}
+
+		/**
+		 * Sets the number of channels of the closed files kept open to be reused, 0 to close the channels with the files.
+		 */
+		public final MountOptions openFiles(int openFiles) {
+			this.openFiles = openFiles;
+			return this;
+		}
+
 		public final MountedFs mount() throws IOException {
 			if (migrateFs) {
 				do {
@@ -215,26 +286,80 @@ public final class FuseCryptoFs implements MountedFs {
 			} else {
 				log.info("Mount point: " + mountPoint);
 			}
+
+			CryptoFileSystem fs = open();
+			return FuseCryptoFs.mount(fs, mountPoint, LayeredFileSystem.layer(fs)
+					.ioSlots(ioSlots)
+					.bulkRate(bulkRate)
+					.openFileCache(openFiles, ciphertextProbe(fs)));
+		}
+
+		/**
+		 * Opens the vault without mounting it, after creating it if requested.
+		 */
+		public final CryptoFileSystem open() throws IOException {
 			if (initializeVault) {
+				log.info("Vault created with the cipher combo {}", cipherCombo);
 				initializeNewVault();
 			}
+			return open(this::loadMasterkey);
+		}
+
+		/**
+		 * Opens the vault without mounting it, with its key already loaded by {@link #loadMasterkey()}.
+		 */
+		public final CryptoFileSystem open(Masterkey masterkey) throws IOException {
+			return open(ignored -> masterkey.copy());
+		}
 
+		private CryptoFileSystem open(MasterkeyLoader keyLoader) throws IOException {
 			List<FileSystemFlags> flags = new ArrayList<>();
 			if (readOnly) {
 				flags.add(READONLY);
 			}
 			CryptoFileSystemProperties cryptoFileSystemProperties = CryptoFileSystemProperties
 					.cryptoFileSystemProperties()
-					.withKeyLoader(keyId -> {
-						Preconditions.checkArgument(SCHEME.equalsIgnoreCase(keyId.getScheme()), "Only supports keys with scheme " + SCHEME);
-						Path keyFilePath = vaultDir.resolve(keyId.getSchemeSpecificPart());
-						return masterkeyFileAccess.load(keyFilePath, passphrase);
-					})
+					.withKeyLoader(keyLoader)
 					.withFlags(flags.toArray(EMPTY_FLAGS))
 					.build();
 
-			CryptoFileSystem fs = CryptoFileSystemProvider.newFileSystem(vaultDir, cryptoFileSystemProperties);
-			return FuseCryptoFs.mount(fs, mountPoint);
+			return CryptoFileSystemProvider.newFileSystem(vaultDir, cryptoFileSystemProperties);
+		}
+
+		/**
+		 * Loads the key of the vault from the passphrase, a costly derivation done once for {@link #open(Masterkey)}
+		 * and {@link #openCryptor(Masterkey)}.
+		 */
+		public final Masterkey loadMasterkey() throws IOException {
+			try {
+				return loadMasterkey(readConfig().getKeyId());
+			} catch (CryptoException e) {
+				throw new IOException("Failed to load the key of the vault.", e);
+			}
+		}
+
+		/**
+		 * Creates a cryptor of the vault, to access to the ciphertext files without opening the vault.
+		 *
+		 * @param masterkey key of the vault loaded by {@link #loadMasterkey()}, copied by the cryptor
+		 */
+		public final Cryptor openCryptor(Masterkey masterkey) throws IOException {
+			try {
+				VaultConfig config = readConfig().verify(masterkey.getEncoded(), Constants.VAULT_VERSION);
+				return CryptorProvider.forScheme(config.getCipherCombo()).provide(masterkey.copy(), secureRandom);
+			} catch (CryptoException e) {
+				throw new IOException("Failed to verify the configuration of the vault.", e);
+			}
+		}
+
+		private UnverifiedVaultConfig readConfig() throws IOException {
+			return VaultConfig.decode(Files.readString(vaultDir.resolve(VAULTCONFIG_FILENAME)));
+		}
+
+		private Masterkey loadMasterkey(URI keyId) {
+			Preconditions.checkArgument(SCHEME.equalsIgnoreCase(keyId.getScheme()), "Only supports keys with scheme " + SCHEME);
+			Path keyFilePath = vaultDir.resolve(keyId.getSchemeSpecificPart());
+			return masterkeyFileAccess.load(keyFilePath, passphrase);
 		}
 
 		private void initializeNewVault() throws IOException {
@@ -249,7 +374,7 @@ public final class FuseCryptoFs implements MountedFs {
 				try {
 					MasterkeyLoader loader = ignored -> masterkey.copy();
 					CryptoFileSystemProperties fsProps = CryptoFileSystemProperties.cryptoFileSystemProperties()
-							.withCipherCombo(CryptorProvider.Scheme.SIV_CTRMAC)
+							.withCipherCombo(cipherCombo)
 							.withKeyLoader(loader)
 							.build();
 					CryptoFileSystemProvider.initialize(vaultDir, fsProps, KEY_ID);
@@ -0,0 +1,182 @@
+package com.github.llbrt.cryptofs.nio;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Shares a fixed number of execution slots between the lanes of operations.
+ * <p>
+ * The slots are granted immediately while some are free. When all are taken, the waiting operations are granted by
+ * weighted fair queuing: each operation gets a tag equal to its cost divided by the weight of its lane, added to the
+ * tag of the previous operation of the lane, and the smallest tag is granted first. The metadata operations, cheap
+ * and heavily weighted, are granted before the queued bulk transfers.
+ */
+final class IoScheduler {
+
+	/**
+	 * Lanes of operations, with their weights.
+	 */
+	enum Lane {
+		METADATA(16),
+		SMALL_IO(4),
+		BULK_IO(1);
+
+		private final int weight;
+
+		Lane(int weight) {
+			this.weight = weight;
+		}
+	}
+
+	// Cost unit of the transfers: a cleartext chunk
+	private static final int COST_UNIT = 32 * 1024;
+
+	// Data transferred by a channel before its operations are bulk transfers
+	static final long BULK_THRESHOLD = 1024 * 1024;
+
+	private final int slots;
+	private final RateLimiter bulkRate;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	// Guarded by lock
+	private final Map<Lane, ArrayDeque<Ticket>> queues = new EnumMap<>(Lane.class);
+	private final double[] lastTags = new double[Lane.values().length];
+	private double virtualTime;
+	private int running;
+
+	/**
+	 * @param slots         number of operations executed at the same time
+	 * @param bulkRateBytes maximum number of bytes per second of the bulk transfers, 0 if unlimited
+	 */
+	IoScheduler(int slots, long bulkRateBytes) {
+		this.slots = slots;
+		this.bulkRate = bulkRateBytes > 0 ? RateLimiter.create(bulkRateBytes) : null;
+		for (Lane lane : Lane.values()) {
+			queues.put(lane, new ArrayDeque<>());
+		}
+	}
+
+	static Lane transferLane(long transferred) {
+		return transferred >= BULK_THRESHOLD ? Lane.BULK_IO : Lane.SMALL_IO;
+	}
+
+	/**
+	 * Executes a metadata operation.
+	 */
+	<T> T metadata(IoOperation<T> operation) throws IOException {
+		return execute(Lane.METADATA, 1, operation);
+	}
+
+	/**
+	 * Executes a transfer of data.
+	 */
+	<T> T transfer(Lane lane, long bytes, IoOperation<T> operation) throws IOException {
+		if (lane == Lane.BULK_IO && bulkRate != null && bytes > 0) {
+			bulkRate.acquire((int) Math.min(bytes, Integer.MAX_VALUE));
+		}
+		return execute(lane, Math.max(1, bytes / COST_UNIT), operation);
+	}
+
+	private <T> T execute(Lane lane, long cost, IoOperation<T> operation) throws IOException {
+		acquire(lane, cost);
+		try {
+			return operation.execute();
+		} finally {
+			release();
+		}
+	}
+
+	private void acquire(Lane lane, long cost) throws InterruptedIOException {
+		lock.lock();
+		try {
+			double tag = Math.max(virtualTime, lastTags[lane.ordinal()]) + (double) cost / lane.weight;
+			lastTags[lane.ordinal()] = tag;
+			if (running < slots && isEmpty()) {
+				running++;
+				virtualTime = Math.max(virtualTime, tag);
+				return;
+			}
+			Ticket ticket = new Ticket(tag, lock.newCondition());
+			queues.get(lane).add(ticket);
+			while (!ticket.granted) {
+				try {
+					ticket.condition.await();
+				} catch (InterruptedException e) {
+					if (ticket.granted) {
+						// The slot is taken: release it
+						running--;
+						grantNext();
+					} else {
+						queues.get(lane).remove(ticket);
+					}
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while waiting for an I/O slot");
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void release() {
+		lock.lock();
+		try {
+			running--;
+			grantNext();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void grantNext() {
+		while (running < slots) {
+			ArrayDeque<Ticket> next = null;
+			for (ArrayDeque<Ticket> queue : queues.values()) {
+				if (!queue.isEmpty() && (next == null || queue.peek().tag < next.peek().tag)) {
+					next = queue;
+				}
+			}
+			if (next == null) {
+				return;
+			}
+			Ticket ticket = next.poll();
+			virtualTime = Math.max(virtualTime, ticket.tag);
+			ticket.granted = true;
+			running++;
+			ticket.condition.signal();
+		}
+	}
+
+	private boolean isEmpty() {
+		for (ArrayDeque<Ticket> queue : queues.values()) {
+			if (!queue.isEmpty()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@FunctionalInterface
+	interface IoOperation<T> {
+		T execute() throws IOException;
+	}
+
+	private static final class Ticket {
+		private final double tag;
+		private final Condition condition;
+		// Guarded by the lock of the scheduler
+		private boolean granted;
+
+		Ticket(double tag, Condition condition) {
+			this.tag = tag;
+			this.condition = condition;
+		}
+	}
+}
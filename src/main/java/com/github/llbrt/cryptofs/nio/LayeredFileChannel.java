@@ -0,0 +1,166 @@
+package com.github.llbrt.cryptofs.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.llbrt.cryptofs.nio.IoScheduler.IoOperation;
+
+/**
+ * Channel of a file of a {@link LayeredFileSystem}.
+ */
+final class LayeredFileChannel extends FileChannel {
+
+	private final LayeredFileSystem fs;
+	private final Path file;
+	private final FileChannel delegate;
+	private final Set<? extends OpenOption> options;
+	private final OpenFileCache.Version version;
+	private final AtomicLong transferred = new AtomicLong();
+	private volatile boolean written;
+
+	/**
+	 * @param fs       file system of the file
+	 * @param file     path of the file in the underlying file system
+	 * @param delegate channel of the underlying file system
+	 * @param options  options of the channel
+	 * @param version  version of the file when the channel was opened, <code>null</code> if the channel is not kept
+	 *                 open on close
+	 */
+	LayeredFileChannel(LayeredFileSystem fs, Path file, FileChannel delegate, Set<? extends OpenOption> options,
+			OpenFileCache.Version version) {
+		this.fs = fs;
+		this.file = file;
+		this.delegate = delegate;
+		this.options = options;
+		this.version = version;
+	}
+
+	FileChannel getDelegate() {
+		return delegate;
+	}
+
+	/**
+	 * Executes a transfer of data of the channel.
+	 */
+	private <T> T transfer(long bytes, IoOperation<T> operation) throws IOException {
+		T result = fs.transfer(transferred.get(), bytes, operation);
+		transferred.addAndGet(bytes);
+		return result;
+	}
+
+	/**
+	 * Marks the channel as written, to be closed with the file.
+	 */
+	private <T> T written(T result) {
+		written = true;
+		return result;
+	}
+
+	private static long remaining(ByteBuffer[] buffers, int offset, int length) {
+		long remaining = 0;
+		for (int i = offset; i < offset + length; i++) {
+			remaining += buffers[i].remaining();
+		}
+		return remaining;
+	}
+
+	@Override
+	public int read(ByteBuffer dst) throws IOException {
+		return transfer(dst.remaining(), () -> delegate.read(dst));
+	}
+
+	@Override
+	public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+		return transfer(remaining(dsts, offset, length), () -> delegate.read(dsts, offset, length));
+	}
+
+	@Override
+	public int read(ByteBuffer dst, long position) throws IOException {
+		return transfer(dst.remaining(), () -> delegate.read(dst, position));
+	}
+
+	@Override
+	public int write(ByteBuffer src) throws IOException {
+		return written(transfer(src.remaining(), () -> delegate.write(src)));
+	}
+
+	@Override
+	public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+		return written(transfer(remaining(srcs, offset, length), () -> delegate.write(srcs, offset, length)));
+	}
+
+	@Override
+	public int write(ByteBuffer src, long position) throws IOException {
+		return written(transfer(src.remaining(), () -> delegate.write(src, position)));
+	}
+
+	@Override
+	public long position() throws IOException {
+		return delegate.position();
+	}
+
+	@Override
+	public FileChannel position(long newPosition) throws IOException {
+		delegate.position(newPosition);
+		return this;
+	}
+
+	@Override
+	public long size() throws IOException {
+		return delegate.size();
+	}
+
+	@Override
+	public FileChannel truncate(long size) throws IOException {
+		delegate.truncate(size);
+		return written(this);
+	}
+
+	@Override
+	public void force(boolean metaData) throws IOException {
+		delegate.force(metaData);
+	}
+
+	@Override
+	public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+		return transfer(count, () -> delegate.transferTo(position, count, target));
+	}
+
+	@Override
+	public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+		return written(transfer(count, () -> delegate.transferFrom(src, position, count)));
+	}
+
+	@Override
+	public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+		return delegate.map(mode, position, size);
+	}
+
+	@Override
+	public FileLock lock(long position, long size, boolean shared) throws IOException {
+		return delegate.lock(position, size, shared);
+	}
+
+	@Override
+	public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+		return delegate.tryLock(position, size, shared);
+	}
+
+	@Override
+	protected void implCloseChannel() throws IOException {
+		// The channels written are closed to write their data
+		OpenFileCache openFileCache = fs.openFileCache();
+		if (openFileCache == null || written || !openFileCache.release(file, options, delegate, version)) {
+			delegate.close();
+		}
+	}
+}
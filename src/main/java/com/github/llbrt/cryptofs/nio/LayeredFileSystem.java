@@ -0,0 +1,251 @@
+package com.github.llbrt.cryptofs.nio;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystem;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.UserPrincipalLookupService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.llbrt.cryptofs.nio.IoScheduler.IoOperation;
+import com.github.llbrt.cryptofs.nio.IoScheduler.Lane;
+
+/**
+ * File system placed between the FUSE adapter and the vault file system.
+ * <p>
+ * All the calls are forwarded to the underlying file system, the layers configured with the {@link Builder} may change
+ * how they are executed. Closing this file system releases the layers only, the underlying file system stays open.
+ */
+public final class LayeredFileSystem extends FileSystem {
+	private static final Logger log = LoggerFactory.getLogger(LayeredFileSystem.class);
+
+	private final FileSystem delegate;
+	private final LayeredFileSystemProvider provider;
+	private final IoScheduler scheduler;
+	private final OpenFileCache openFileCache;
+	private volatile boolean open = true;
+
+	private LayeredFileSystem(FileSystem delegate, Builder builder) {
+		this.delegate = delegate;
+		this.scheduler = builder.ioSlots > 0 ? new IoScheduler(builder.ioSlots, builder.bulkRate) : null;
+		this.openFileCache = builder.openFiles > 0 ? new OpenFileCache(builder.openFiles, builder.storageProbe) : null;
+		this.provider = new LayeredFileSystemProvider(this, delegate.provider());
+	}
+
+	public static Builder layer(FileSystem delegate) {
+		return new Builder(delegate);
+	}
+
+	FileSystem getDelegate() {
+		return delegate;
+	}
+
+	/**
+	 * @return the cache of the channels or <code>null</code> if the channels are closed with the files
+	 */
+	OpenFileCache openFileCache() {
+		return openFileCache;
+	}
+
+	/**
+	 * Executes a metadata operation, in the lane of the metadata if the operations are scheduled.
+	 */
+	<T> T metadata(IoOperation<T> operation) throws IOException {
+		return scheduler == null ? operation.execute() : scheduler.metadata(operation);
+	}
+
+	/**
+	 * Executes a transfer of data, in the lane of the small or bulk transfers if the operations are scheduled.
+	 *
+	 * @param transferred data already transferred by the channel
+	 * @param bytes       data to transfer
+	 */
+	<T> T transfer(long transferred, long bytes, IoOperation<T> operation) throws IOException {
+		if (scheduler == null) {
+			return operation.execute();
+		}
+		Lane lane = IoScheduler.transferLane(transferred);
+		return scheduler.transfer(lane, bytes, operation);
+	}
+
+	/**
+	 * Executes a copy of a file, in the lane of the transfers of its size if the operations are scheduled.
+	 *
+	 * @param source file copied, in the underlying file system
+	 */
+	<T> T copy(Path source, IoOperation<T> operation) throws IOException {
+		if (scheduler == null) {
+			return operation.execute();
+		}
+		long size;
+		try {
+			size = scheduler.metadata(() -> delegate.provider().readAttributes(source, BasicFileAttributes.class).size());
+		} catch (IOException e) {
+			// Reported by the copy
+			size = 0;
+		}
+		return scheduler.transfer(IoScheduler.transferLane(size), size, operation);
+	}
+
+	LayeredPath wrap(Path path) {
+		return new LayeredPath(this, path);
+	}
+
+	/**
+	 * @return the root directory of the file system
+	 */
+	public Path getRoot() {
+		return getRootDirectories().iterator().next();
+	}
+
+	@Override
+	public LayeredFileSystemProvider provider() {
+		return provider;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!open) {
+			return;
+		}
+		open = false;
+		if (openFileCache != null) {
+			openFileCache.close();
+		}
+		log.info("Layers closed");
+	}
+
+	@Override
+	public boolean isOpen() {
+		return open && delegate.isOpen();
+	}
+
+	@Override
+	public boolean isReadOnly() {
+		return delegate.isReadOnly();
+	}
+
+	@Override
+	public String getSeparator() {
+		return delegate.getSeparator();
+	}
+
+	@Override
+	public Iterable<Path> getRootDirectories() {
+		List<Path> roots = new ArrayList<>();
+		delegate.getRootDirectories().forEach(root -> roots.add(wrap(root)));
+		return roots;
+	}
+
+	@Override
+	public Iterable<FileStore> getFileStores() {
+		return delegate.getFileStores();
+	}
+
+	@Override
+	public Set<String> supportedFileAttributeViews() {
+		return delegate.supportedFileAttributeViews();
+	}
+
+	@Override
+	public Path getPath(String first, String... more) {
+		return wrap(delegate.getPath(first, more));
+	}
+
+	@Override
+	public PathMatcher getPathMatcher(String syntaxAndPattern) {
+		PathMatcher matcher = delegate.getPathMatcher(syntaxAndPattern);
+		return path -> path instanceof LayeredPath && matcher.matches(LayeredPath.unwrap(path));
+	}
+
+	@Override
+	public UserPrincipalLookupService getUserPrincipalLookupService() {
+		return delegate.getUserPrincipalLookupService();
+	}
+
+	@Override
+	public WatchService newWatchService() throws IOException {
+		return delegate.newWatchService();
+	}
+
+	@Override
+	public String toString() {
+		return delegate.toString();
+	}
+
+	/**
+	 * Reads the attributes of the storage of a file, changed when the file is changed outside the file system.
+	 */
+	@FunctionalInterface
+	public interface StorageProbe {
+		BasicFileAttributes attributes(Path file) throws IOException;
+	}
+
+	public static final class Builder {
+		private final FileSystem delegate;
+		private int ioSlots;
+		private long bulkRate;
+		private int openFiles;
+		private StorageProbe storageProbe;
+
+		Builder(FileSystem delegate) {
+			this.delegate = delegate;
+		}
+
+		/**
+		 * Schedules the operations: metadata, small and bulk transfers are executed in separate lanes, the metadata
+		 * operations are not delayed by the bulk transfers.
+		 *
+		 * @param slots number of operations executed at the same time, 0 to not schedule the operations
+		 */
+		public final Builder ioSlots(int slots) {
+			if (slots < 0) {
+				throw new IllegalArgumentException("Invalid number of I/O slots: " + slots);
+			}
+			this.ioSlots = slots;
+			return this;
+		}
+
+		/**
+		 * Limits the rate of the bulk transfers, when the operations are scheduled.
+		 *
+		 * @param bytesPerSecond maximum rate, 0 if unlimited
+		 */
+		public final Builder bulkRate(long bytesPerSecond) {
+			if (bytesPerSecond < 0) {
+				throw new IllegalArgumentException("Invalid bulk rate: " + bytesPerSecond);
+			}
+			this.bulkRate = bytesPerSecond;
+			return this;
+		}
+
+		/**
+		 * Keeps the channels of the recently closed files open, to be reused by the next open of the files.
+		 *
+		 * @param maxOpenFiles maximum number of channels kept open, 0 to close the channels with the files
+		 * @param probe        reads the attributes of the storage of a file, given its path in the underlying file
+		 *                     system; a channel is not reused if they changed since it was kept
+		 */
+		public final Builder openFileCache(int maxOpenFiles, StorageProbe probe) {
+			if (maxOpenFiles < 0) {
+				throw new IllegalArgumentException("Invalid number of open files: " + maxOpenFiles);
+			}
+			this.openFiles = maxOpenFiles;
+			this.storageProbe = Objects.requireNonNull(probe);
+			return this;
+		}
+
+		public final LayeredFileSystem build() {
+			return new LayeredFileSystem(delegate, this);
+		}
+	}
+}
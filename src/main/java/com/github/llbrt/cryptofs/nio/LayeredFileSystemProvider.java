@@ -0,0 +1,246 @@
+package com.github.llbrt.cryptofs.nio;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.AccessMode;
+import java.nio.file.CopyOption;
+import java.nio.file.DirectoryStream;
+import java.nio.file.DirectoryStream.Filter;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystem;
+import java.nio.file.LinkOption;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.FileAttributeView;
+import java.nio.file.spi.FileSystemProvider;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Provider of a {@link LayeredFileSystem}: forwards the calls to the provider of the underlying file system.
+ * <p>
+ * Only the file system created by {@link LayeredFileSystem#layer(FileSystem)} is available, it is not registered in the
+ * installed providers.
+ */
+public final class LayeredFileSystemProvider extends FileSystemProvider {
+
+	private static final String SCHEME = "cryfsmount";
+
+	private final LayeredFileSystem fs;
+	private final FileSystemProvider delegate;
+
+	LayeredFileSystemProvider(LayeredFileSystem fs, FileSystemProvider delegate) {
+		this.fs = fs;
+		this.delegate = delegate;
+	}
+
+	/**
+	 * @return the path in the underlying file system, used as key of the file
+	 */
+	private static Path unwrap(Path path) {
+		return LayeredPath.unwrap(path).toAbsolutePath().normalize();
+	}
+
+	/**
+	 * Closes the channels kept open for the file if it changed outside the file system.
+	 */
+	private void refresh(Path file) {
+		OpenFileCache openFileCache = fs.openFileCache();
+		if (openFileCache != null) {
+			openFileCache.refresh(file);
+		}
+	}
+
+	/**
+	 * Closes the channels kept open for the file, or for the files of the directory.
+	 */
+	private void invalidate(Path file) {
+		OpenFileCache openFileCache = fs.openFileCache();
+		if (openFileCache != null) {
+			openFileCache.invalidate(file);
+		}
+	}
+
+	@Override
+	public String getScheme() {
+		return SCHEME;
+	}
+
+	@Override
+	public FileSystem newFileSystem(URI uri, Map<String, ?> env) throws IOException {
+		throw new UnsupportedOperationException("Use LayeredFileSystem.layer()");
+	}
+
+	@Override
+	public FileSystem getFileSystem(URI uri) {
+		throw new UnsupportedOperationException("Use LayeredFileSystem.layer()");
+	}
+
+	@Override
+	public Path getPath(URI uri) {
+		throw new UnsupportedOperationException("Use LayeredFileSystem.getPath()");
+	}
+
+	@Override
+	public SeekableByteChannel newByteChannel(Path path, Set<? extends OpenOption> options, FileAttribute<?>... attrs) throws IOException {
+		return newFileChannel(path, options, attrs);
+	}
+
+	@Override
+	public FileChannel newFileChannel(Path path, Set<? extends OpenOption> options, FileAttribute<?>... attrs) throws IOException {
+		Path file = unwrap(path);
+		Set<? extends OpenOption> channelOptions = Set.copyOf(options);
+		OpenFileCache openFileCache = fs.openFileCache();
+		if (openFileCache == null) {
+			FileChannel channel = fs.metadata(() -> delegate.newFileChannel(file, options, attrs));
+			return new LayeredFileChannel(fs, file, channel, channelOptions, null);
+		}
+		// Also closes the channels of the other modes, they share the content of the file
+		openFileCache.refresh(file);
+		OpenFileCache.Idle reused = openFileCache.reuse(file, channelOptions);
+		if (reused != null) {
+			return new LayeredFileChannel(fs, file, reused.channel(), channelOptions, reused.version());
+		}
+		FileChannel channel = fs.metadata(() -> delegate.newFileChannel(file, options, attrs));
+		return new LayeredFileChannel(fs, file, channel, channelOptions, openFileCache.opened(file, channelOptions));
+	}
+
+	@Override
+	public DirectoryStream<Path> newDirectoryStream(Path dir, Filter<? super Path> filter) throws IOException {
+		DirectoryStream<Path> stream = fs.metadata(() -> delegate.newDirectoryStream(unwrap(dir), entry -> filter.accept(fs.wrap(entry))));
+		return new DirectoryStream<>() {
+
+			@Override
+			public Iterator<Path> iterator() {
+				Iterator<Path> iterator = stream.iterator();
+				return new Iterator<>() {
+
+					@Override
+					public boolean hasNext() {
+						return iterator.hasNext();
+					}
+
+					@Override
+					public Path next() {
+						return fs.wrap(iterator.next());
+					}
+				};
+			}
+
+			@Override
+			public void close() throws IOException {
+				stream.close();
+			}
+		};
+	}
+
+	@Override
+	public void createDirectory(Path dir, FileAttribute<?>... attrs) throws IOException {
+		fs.metadata(() -> {
+			delegate.createDirectory(unwrap(dir), attrs);
+			return null;
+		});
+	}
+
+	@Override
+	public void createSymbolicLink(Path link, Path target, FileAttribute<?>... attrs) throws IOException {
+		fs.metadata(() -> {
+			delegate.createSymbolicLink(unwrap(link), LayeredPath.unwrap(target), attrs);
+			return null;
+		});
+	}
+
+	@Override
+	public Path readSymbolicLink(Path link) throws IOException {
+		return fs.wrap(fs.metadata(() -> delegate.readSymbolicLink(unwrap(link))));
+	}
+
+	@Override
+	public void delete(Path path) throws IOException {
+		Path file = unwrap(path);
+		invalidate(file);
+		fs.metadata(() -> {
+			delegate.delete(file);
+			return null;
+		});
+	}
+
+	@Override
+	public void copy(Path source, Path target, CopyOption... options) throws IOException {
+		Path sourceFile = unwrap(source);
+		Path targetFile = unwrap(target);
+		invalidate(targetFile);
+		fs.copy(sourceFile, () -> {
+			delegate.copy(sourceFile, targetFile, options);
+			return null;
+		});
+	}
+
+	@Override
+	public void move(Path source, Path target, CopyOption... options) throws IOException {
+		Path sourceFile = unwrap(source);
+		Path targetFile = unwrap(target);
+		invalidate(sourceFile);
+		invalidate(targetFile);
+		fs.metadata(() -> {
+			delegate.move(sourceFile, targetFile, options);
+			return null;
+		});
+	}
+
+	@Override
+	public boolean isSameFile(Path path, Path path2) throws IOException {
+		return delegate.isSameFile(unwrap(path), unwrap(path2));
+	}
+
+	@Override
+	public boolean isHidden(Path path) throws IOException {
+		return delegate.isHidden(unwrap(path));
+	}
+
+	@Override
+	public FileStore getFileStore(Path path) throws IOException {
+		return delegate.getFileStore(unwrap(path));
+	}
+
+	@Override
+	public void checkAccess(Path path, AccessMode... modes) throws IOException {
+		fs.metadata(() -> {
+			delegate.checkAccess(unwrap(path), modes);
+			return null;
+		});
+	}
+
+	@Override
+	public <V extends FileAttributeView> V getFileAttributeView(Path path, Class<V> type, LinkOption... options) {
+		return delegate.getFileAttributeView(unwrap(path), type, options);
+	}
+
+	@Override
+	public <A extends BasicFileAttributes> A readAttributes(Path path, Class<A> type, LinkOption... options) throws IOException {
+		Path file = unwrap(path);
+		refresh(file);
+		return fs.metadata(() -> delegate.readAttributes(file, type, options));
+	}
+
+	@Override
+	public Map<String, Object> readAttributes(Path path, String attributes, LinkOption... options) throws IOException {
+		Path file = unwrap(path);
+		refresh(file);
+		return fs.metadata(() -> delegate.readAttributes(file, attributes, options));
+	}
+
+	@Override
+	public void setAttribute(Path path, String attribute, Object value, LinkOption... options) throws IOException {
+		Path file = unwrap(path);
+		fs.metadata(() -> {
+			delegate.setAttribute(file, attribute, value, options);
+			return null;
+		});
+	}
+}
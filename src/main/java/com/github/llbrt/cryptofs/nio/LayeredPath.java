@@ -0,0 +1,152 @@
+package com.github.llbrt.cryptofs.nio;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.ProviderMismatchException;
+import java.nio.file.WatchEvent.Kind;
+import java.nio.file.WatchEvent.Modifier;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+/**
+ * Path of a {@link LayeredFileSystem}, wrapping a path of the underlying file system.
+ */
+final class LayeredPath implements Path {
+
+	private final LayeredFileSystem fs;
+	private final Path delegate;
+
+	LayeredPath(LayeredFileSystem fs, Path delegate) {
+		this.fs = fs;
+		this.delegate = delegate;
+	}
+
+	static Path unwrap(Path path) {
+		if (!(path instanceof LayeredPath layeredPath)) {
+			throw new ProviderMismatchException("Not a layered path: " + path);
+		}
+		return layeredPath.delegate;
+	}
+
+	Path getDelegate() {
+		return delegate;
+	}
+
+	private LayeredPath wrap(Path path) {
+		return path == null ? null : new LayeredPath(fs, path);
+	}
+
+	@Override
+	public LayeredFileSystem getFileSystem() {
+		return fs;
+	}
+
+	@Override
+	public boolean isAbsolute() {
+		return delegate.isAbsolute();
+	}
+
+	@Override
+	public Path getRoot() {
+		return wrap(delegate.getRoot());
+	}
+
+	@Override
+	public Path getFileName() {
+		return wrap(delegate.getFileName());
+	}
+
+	@Override
+	public Path getParent() {
+		return wrap(delegate.getParent());
+	}
+
+	@Override
+	public int getNameCount() {
+		return delegate.getNameCount();
+	}
+
+	@Override
+	public Path getName(int index) {
+		return wrap(delegate.getName(index));
+	}
+
+	@Override
+	public Path subpath(int beginIndex, int endIndex) {
+		return wrap(delegate.subpath(beginIndex, endIndex));
+	}
+
+	@Override
+	public boolean startsWith(Path other) {
+		return other instanceof LayeredPath && delegate.startsWith(unwrap(other));
+	}
+
+	@Override
+	public boolean endsWith(Path other) {
+		return other instanceof LayeredPath && delegate.endsWith(unwrap(other));
+	}
+
+	@Override
+	public Path normalize() {
+		return wrap(delegate.normalize());
+	}
+
+	@Override
+	public Path resolve(Path other) {
+		return wrap(delegate.resolve(unwrap(other)));
+	}
+
+	@Override
+	public Path relativize(Path other) {
+		return wrap(delegate.relativize(unwrap(other)));
+	}
+
+	@Override
+	public URI toUri() {
+		return delegate.toUri();
+	}
+
+	@Override
+	public Path toAbsolutePath() {
+		return wrap(delegate.toAbsolutePath());
+	}
+
+	@Override
+	public Path toRealPath(LinkOption... options) throws IOException {
+		return wrap(delegate.toRealPath(options));
+	}
+
+	@Override
+	public WatchKey register(WatchService watcher, Kind<?>[] events, Modifier... modifiers) throws IOException {
+		return delegate.register(watcher, events, modifiers);
+	}
+
+	@Override
+	public int compareTo(Path other) {
+		return delegate.compareTo(unwrap(other));
+	}
+
+	@Override
+	public int hashCode() {
+		return delegate.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof LayeredPath)) {
+			return false;
+		}
+		LayeredPath other = (LayeredPath) obj;
+		return fs == other.fs && delegate.equals(other.delegate);
+	}
+
+	@Override
+	public String toString() {
+		return delegate.toString();
+	}
+}
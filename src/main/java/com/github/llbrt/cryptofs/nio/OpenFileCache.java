@@ -0,0 +1,244 @@
+package com.github.llbrt.cryptofs.nio;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.LinkOption;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.llbrt.cryptofs.nio.LayeredFileSystem.StorageProbe;
+
+/**
+ * Keeps the channels of the recently closed files open, to be reused by the next open of the files.
+ * <p>
+ * The channel of the vault keeps the decrypted header of the file and the channel of the ciphertext file: reusing it
+ * avoids resolving the ciphertext path, opening the ciphertext file and decrypting the header again. Only the channels
+ * not written are kept, the others are closed to write their data to the ciphertext file.
+ * <p>
+ * The least recently closed channels are closed when the limit is reached. A channel is closed when its file is moved
+ * or deleted, not kept if the path of the file no longer leads to the storage it was opened on (the file was renamed
+ * and replaced while open), and closed before the file is opened or its attributes read if the storage of the file
+ * changed since it was kept.
+ */
+final class OpenFileCache implements Closeable {
+	private static final Logger log = LoggerFactory.getLogger(OpenFileCache.class);
+
+	// Options of the channels kept, the other options change the file on open
+	private static final Set<OpenOption> CACHEABLE_OPTIONS = Set.of(StandardOpenOption.READ, StandardOpenOption.WRITE,
+			StandardOpenOption.CREATE, LinkOption.NOFOLLOW_LINKS);
+	// Read and write modes of the keys
+	private static final boolean[][] KEY_MODES = { { true, false }, { false, true }, { true, true } };
+
+	private final int maxIdle;
+	private final StorageProbe probe;
+	// Guarded by this, in order of release
+	private final LinkedHashMap<Key, Idle> idle = new LinkedHashMap<>();
+	private boolean closed;
+
+	/**
+	 * @param maxIdle maximum number of channels kept open
+	 * @param probe   reads the attributes of the storage of the files
+	 */
+	OpenFileCache(int maxIdle, StorageProbe probe) {
+		this.maxIdle = maxIdle;
+		this.probe = probe;
+	}
+
+	/**
+	 * Closes the channels of the file, in all the modes, if its storage changed since they were kept.
+	 * <p>
+	 * A channel kept open keeps the size, header and content of the file in the vault: it must be called before the
+	 * file is opened or its attributes read.
+	 */
+	void refresh(Path file) {
+		List<Key> keys = new ArrayList<>(KEY_MODES.length);
+		synchronized (this) {
+			for (boolean[] mode : KEY_MODES) {
+				Key key = new Key(file, mode[0], mode[1]);
+				if (idle.containsKey(key)) {
+					keys.add(key);
+				}
+			}
+		}
+		if (keys.isEmpty()) {
+			return;
+		}
+		Version version;
+		try {
+			version = version(file);
+		} catch (IOException e) {
+			// Deleted or not readable outside the file system
+			log.debug("Channels of {} closed", file, e);
+			version = null;
+		}
+		List<Idle> stale = new ArrayList<>();
+		synchronized (this) {
+			for (Key key : keys) {
+				Idle kept = idle.get(key);
+				if (kept != null && !kept.version.equals(version)) {
+					stale.add(kept);
+					idle.remove(key);
+				}
+			}
+		}
+		stale.forEach(OpenFileCache::close);
+	}
+
+	/**
+	 * @return a channel kept open for the file, with the version of the file it was opened on, or <code>null</code>;
+	 *         the channels changed are closed by {@link #refresh(Path)} first
+	 */
+	Idle reuse(Path file, Set<? extends OpenOption> options) {
+		Key key = key(file, options);
+		if (key == null) {
+			return null;
+		}
+		Idle reused;
+		synchronized (this) {
+			reused = idle.remove(key);
+		}
+		if (reused == null) {
+			return null;
+		}
+		try {
+			if (reused.channel.isOpen()) {
+				reused.channel.position(0);
+				return reused;
+			}
+		} catch (IOException e) {
+			log.debug("Channel of {} not reused", file, e);
+		}
+		close(reused);
+		return null;
+	}
+
+	/**
+	 * Reads the version of a file just opened.
+	 *
+	 * @return the version of the file, or <code>null</code> if its channel is not kept
+	 */
+	Version opened(Path file, Set<? extends OpenOption> options) {
+		if (key(file, options) == null) {
+			return null;
+		}
+		try {
+			return version(file);
+		} catch (IOException e) {
+			log.debug("Channel of {} not kept", file, e);
+			return null;
+		}
+	}
+
+	/**
+	 * Keeps the channel of a file being closed.
+	 *
+	 * @param opened version of the file when the channel was opened, see {@link #opened(Path, Set)}
+	 * @return <code>false</code> if the channel is not kept and must be closed
+	 */
+	boolean release(Path file, Set<? extends OpenOption> options, FileChannel channel, Version opened) {
+		Key key = key(file, options);
+		if (key == null || opened == null || !channel.isOpen()) {
+			return false;
+		}
+		try {
+			// Renamed, then replaced by another file
+			if (!opened.equals(version(file))) {
+				return false;
+			}
+		} catch (IOException e) {
+			return false;
+		}
+		List<Idle> evicted = new ArrayList<>();
+		synchronized (this) {
+			if (closed || idle.containsKey(key)) {
+				return false;
+			}
+			idle.put(key, new Idle(channel, opened));
+			Iterator<Idle> eldest = idle.values().iterator();
+			while (idle.size() > maxIdle) {
+				evicted.add(eldest.next());
+				eldest.remove();
+			}
+		}
+		evicted.forEach(OpenFileCache::close);
+		return true;
+	}
+
+	/**
+	 * Closes the channels of the file, or of the files of the directory.
+	 */
+	void invalidate(Path path) {
+		List<Idle> invalidated = new ArrayList<>();
+		synchronized (this) {
+			for (Iterator<Map.Entry<Key, Idle>> i = idle.entrySet().iterator(); i.hasNext();) {
+				Map.Entry<Key, Idle> entry = i.next();
+				if (entry.getKey().file.startsWith(path)) {
+					invalidated.add(entry.getValue());
+					i.remove();
+				}
+			}
+		}
+		invalidated.forEach(OpenFileCache::close);
+	}
+
+	@Override
+	public void close() {
+		List<Idle> all;
+		synchronized (this) {
+			closed = true;
+			all = new ArrayList<>(idle.values());
+			idle.clear();
+		}
+		all.forEach(OpenFileCache::close);
+	}
+
+	private Version version(Path file) throws IOException {
+		BasicFileAttributes attributes = probe.attributes(file);
+		return new Version(attributes.fileKey(), attributes.lastModifiedTime(), attributes.size());
+	}
+
+	private static Key key(Path file, Set<? extends OpenOption> options) {
+		if (!CACHEABLE_OPTIONS.containsAll(options)) {
+			return null;
+		}
+		boolean write = options.contains(StandardOpenOption.WRITE);
+		boolean read = options.contains(StandardOpenOption.READ) || !write;
+		return new Key(file, read, write);
+	}
+
+	private static void close(Idle idle) {
+		try {
+			idle.channel.close();
+		} catch (IOException e) {
+			log.warn("close of an idle channel failed", e);
+		}
+	}
+
+	private record Key(Path file, boolean read, boolean write) {
+	}
+
+	/**
+	 * Version of the storage of a file.
+	 */
+	record Version(Object fileKey, FileTime lastModified, long size) {
+	}
+
+	/**
+	 * Channel kept open, with the version of the file it was opened on.
+	 */
+	record Idle(FileChannel channel, Version version) {
+	}
+}
@@ -0,0 +1,275 @@
+package com.github.llbrt.cryptofs.stats;
+
+import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.cryptomator.cryptofs.CryptoFileSystem;
+import org.cryptomator.cryptofs.common.Constants;
+import org.cryptomator.cryptolib.api.AuthenticationFailedException;
+import org.cryptomator.cryptolib.api.Cryptor;
+import org.cryptomator.cryptolib.api.FileContentCryptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.io.BaseEncoding;
+
+/**
+ * Computes the disk usage of a vault from the sizes of the ciphertext files.
+ * <p>
+ * The ciphertext directories are walked in parallel and the cleartext sizes are computed from the ciphertext sizes,
+ * header and chunk overhead removed. Only the names of the sub-directories of the reported directories are decrypted.
+ */
+public final class VaultUsage {
+	private static final Logger log = LoggerFactory.getLogger(VaultUsage.class);
+
+	private final CryptoFileSystem fs;
+	private final Path dataDir;
+	private final Cryptor cryptor;
+	private final int headerSize;
+	private final FileContentCryptor contentCryptor;
+	private final int depth;
+
+	/**
+	 * @param fs      vault, opened read-only
+	 * @param cryptor cryptor of the vault
+	 * @param depth   depth of the reported directories, 0 to report the root directory only
+	 */
+	public VaultUsage(CryptoFileSystem fs, Cryptor cryptor, int depth) {
+		this.fs = fs;
+		this.dataDir = fs.getPathToVault().resolve(Constants.DATA_DIR_NAME);
+		this.cryptor = cryptor;
+		this.headerSize = cryptor.fileHeaderCryptor().headerSize();
+		this.contentCryptor = cryptor.fileContentCryptor();
+		this.depth = depth;
+	}
+
+	/**
+	 * Usage of a directory, sub-directories included.
+	 *
+	 * @param path           cleartext path of the directory
+	 * @param size           cleartext size of the files
+	 * @param ciphertextSize size of the ciphertext files
+	 * @param files          number of files
+	 * @param directories    number of sub-directories
+	 * @param children       usages of the reported sub-directories, sorted by name
+	 */
+	public record Usage(Path path, long size, long ciphertextSize, long files, long directories, List<Usage> children) {
+	}
+
+	/**
+	 * Computes the usage of the vault.
+	 *
+	 * @param threads number of directories read at the same time
+	 */
+	public Usage compute(int threads) throws IOException {
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			Path root = fs.getRootDirectories().iterator().next();
+			return pool.invoke(new ReportTask(root, Constants.ROOT_DIR_ID, 0));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Reports a directory: counts its files from the ciphertext directory and decrypts the names of its sub-directories.
+	 */
+	@SuppressWarnings("serial")
+	private final class ReportTask extends RecursiveTask<Usage> {
+		private final Path dir;
+		private final String dirId;
+		private final int level;
+
+		ReportTask(Path dir, String dirId, int level) {
+			this.dir = dir;
+			this.dirId = dirId;
+			this.level = level;
+		}
+
+		@Override
+		protected Usage compute() {
+			try {
+				Path ciphertextDir = contentDir(dirId);
+				if (level >= depth) {
+					Totals totals = new WalkTask(ciphertextDir, true).compute();
+					return totals.usage(dir, List.of());
+				}
+
+				Totals totals = new WalkTask(ciphertextDir, false).compute();
+				List<ReportTask> subDirs = new ArrayList<>();
+				for (SubDir found : totals.subDirs) {
+					ReportTask subDir = new ReportTask(dir.resolve(cleartextName(found.entry(), dirId)), found.dirId(), level + 1);
+					subDir.fork();
+					subDirs.add(subDir);
+				}
+
+				List<Usage> children = new ArrayList<>();
+				for (ReportTask subDir : subDirs) {
+					Usage child = subDir.join();
+					totals.add(child);
+					children.add(child);
+				}
+				children.sort(Comparator.comparing(child -> child.path().getFileName().toString()));
+				return totals.usage(dir, children);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	/**
+	 * Counts the files of a ciphertext directory, and of its sub-directories if recursive; otherwise the
+	 * sub-directories are kept in the totals.
+	 */
+	@SuppressWarnings("serial")
+	private final class WalkTask extends RecursiveTask<Totals> {
+		private final Path ciphertextDir;
+		private final boolean recursive;
+
+		WalkTask(Path ciphertextDir, boolean recursive) {
+			this.ciphertextDir = ciphertextDir;
+			this.recursive = recursive;
+		}
+
+		@Override
+		protected Totals compute() {
+			Totals totals = new Totals();
+			List<WalkTask> subDirs = new ArrayList<>();
+			try (DirectoryStream<Path> entries = Files.newDirectoryStream(ciphertextDir)) {
+				for (Path entry : entries) {
+					String name = entry.getFileName().toString();
+					if (!name.endsWith(Constants.CRYPTOMATOR_FILE_SUFFIX) && !name.endsWith(Constants.DEFLATED_FILE_SUFFIX)
+							|| name.equals(Constants.DIR_BACKUP_FILE_NAME)) {
+						continue;
+					}
+					BasicFileAttributes attributes = Files.readAttributes(entry, BasicFileAttributes.class, NOFOLLOW_LINKS);
+					if (attributes.isRegularFile()) {
+						totals.addFile(attributes.size());
+						continue;
+					}
+					if (!attributes.isDirectory()) {
+						continue;
+					}
+					// Directory, symbolic link or file with a shortened name
+					Path dirFile = entry.resolve(Constants.DIR_FILE_NAME);
+					Path contentsFile = entry.resolve(Constants.CONTENTS_FILE_NAME);
+					if (Files.isRegularFile(dirFile, NOFOLLOW_LINKS)) {
+						totals.directories++;
+						String subDirId = Files.readString(dirFile);
+						if (recursive) {
+							WalkTask subDir = new WalkTask(contentDir(subDirId), true);
+							subDir.fork();
+							subDirs.add(subDir);
+						} else {
+							totals.subDirs.add(new SubDir(entry, subDirId));
+						}
+					} else if (Files.isRegularFile(contentsFile, NOFOLLOW_LINKS)) {
+						totals.addFile(Files.size(contentsFile));
+					}
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			for (WalkTask subDir : subDirs) {
+				totals.add(subDir.join());
+			}
+			return totals;
+		}
+	}
+
+	/**
+	 * Sub-directory found in a ciphertext directory.
+	 *
+	 * @param entry ciphertext entry of the sub-directory, its name may be shortened
+	 * @param dirId id of the sub-directory
+	 */
+	private record SubDir(Path entry, String dirId) {
+	}
+
+	/**
+	 * Decrypts the name of an entry of a ciphertext directory.
+	 *
+	 * @param parentDirId id of the directory of the entry
+	 */
+	private String cleartextName(Path entry, String parentDirId) throws IOException {
+		String name = entry.getFileName().toString();
+		if (name.endsWith(Constants.DEFLATED_FILE_SUFFIX)) {
+			name = Files.readString(entry.resolve(Constants.INFLATED_FILE_NAME));
+		}
+		if (!name.endsWith(Constants.CRYPTOMATOR_FILE_SUFFIX)) {
+			throw new IOException("Invalid ciphertext name: " + entry);
+		}
+		String encryptedName = name.substring(0, name.length() - Constants.CRYPTOMATOR_FILE_SUFFIX.length());
+		try {
+			return cryptor.fileNameCryptor().decryptFilename(BaseEncoding.base64Url(), encryptedName,
+					parentDirId.getBytes(StandardCharsets.UTF_8));
+		} catch (AuthenticationFailedException e) {
+			throw new IOException("Invalid ciphertext name: " + entry, e);
+		}
+	}
+
+	private Path contentDir(String dirId) {
+		String hash = cryptor.fileNameCryptor().hashDirectoryId(dirId);
+		return dataDir.resolve(hash.substring(0, 2)).resolve(hash.substring(2));
+	}
+
+	private long cleartextSize(long ciphertextSize) {
+		if (ciphertextSize <= headerSize) {
+			return 0;
+		}
+		try {
+			return contentCryptor.cleartextSize(ciphertextSize - headerSize);
+		} catch (IllegalArgumentException e) {
+			// Truncated chunk: counted as empty
+			log.warn("Invalid ciphertext size: {}", ciphertextSize);
+			return 0;
+		}
+	}
+
+	private final class Totals {
+		private long size;
+		private long ciphertextSize;
+		private long files;
+		private long directories;
+		// Sub-directories found by a walk not recursive
+		private final List<SubDir> subDirs = new ArrayList<>();
+
+		void addFile(long ciphertextFileSize) {
+			files++;
+			ciphertextSize += ciphertextFileSize;
+			size += cleartextSize(ciphertextFileSize);
+		}
+
+		void add(Totals other) {
+			size += other.size;
+			ciphertextSize += other.ciphertextSize;
+			files += other.files;
+			directories += other.directories;
+		}
+
+		void add(Usage usage) {
+			size += usage.size();
+			ciphertextSize += usage.ciphertextSize();
+			files += usage.files();
+			directories += usage.directories();
+		}
+
+		Usage usage(Path path, List<Usage> children) {
+			return new Usage(path, size, ciphertextSize, files, directories, children);
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package com.github.llbrt.cryptofs.nio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.github.llbrt.cryptofs.nio.IoScheduler.Lane;
+
+public class TestIoScheduler {
+
+	private static final int BULK_SIZE = 1024 * 1024;
+	private static final int QUEUED_BULKS = 4;
+
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+
+	@AfterEach
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testMetadata_overtakesQueuedBulk() throws Exception {
+		IoScheduler scheduler = new IoScheduler(1, 0);
+		List<String> granted = new ArrayList<>();
+
+		// The only slot is held by a bulk transfer
+		CountDownLatch holding = new CountDownLatch(1);
+		Semaphore release = new Semaphore(0);
+		Future<?> holder = executor.submit(() -> scheduler.transfer(Lane.BULK_IO, BULK_SIZE, () -> {
+			holding.countDown();
+			release.acquireUninterruptibly();
+			return null;
+		}));
+		assertTrue(holding.await(10, TimeUnit.SECONDS));
+
+		List<Future<?>> queued = new ArrayList<>();
+		for (int i = 0; i < QUEUED_BULKS; i++) {
+			String name = "bulk-" + i;
+			queued.add(submit(() -> scheduler.transfer(Lane.BULK_IO, BULK_SIZE, () -> grant(granted, name))));
+		}
+		queued.add(submit(() -> scheduler.metadata(() -> grant(granted, "metadata"))));
+
+		release.release();
+		holder.get(10, TimeUnit.SECONDS);
+		for (Future<?> future : queued) {
+			future.get(10, TimeUnit.SECONDS);
+		}
+		assertEquals(QUEUED_BULKS + 1, granted.size());
+		assertEquals("metadata", granted.get(0));
+	}
+
+	private static Void grant(List<String> granted, String name) {
+		synchronized (granted) {
+			granted.add(name);
+		}
+		return null;
+	}
+
+	// Submits an operation and waits for it to be queued
+	private Future<?> submit(IoScheduler.IoOperation<?> operation) throws InterruptedException {
+		Thread[] thread = new Thread[1];
+		CountDownLatch started = new CountDownLatch(1);
+		Future<?> future = executor.submit(() -> {
+			thread[0] = Thread.currentThread();
+			started.countDown();
+			return operation.execute();
+		});
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+		while (thread[0].getState() != Thread.State.WAITING) {
+			Thread.sleep(1);
+		}
+		return future;
+	}
+}
@@ -0,0 +1,117 @@
+package com.github.llbrt.cryptofs.nio;
+
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.stream.Stream;
+
+import org.cryptomator.cryptofs.CryptoFileSystem;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.github.llbrt.cryptofs.fuse.FuseCryptoFs;
+
+public class TestOpenFileCache {
+
+	private static final char[] PASSPHRASE = "T€st-Un1t".toCharArray();
+	private static final String VAULT_CURRENT_FORMAT = "vault-v8";
+	private static final String FILE_NAME = "sum.md5";
+	private static final int OPEN_FILES = 4;
+
+	@TempDir
+	public Path tempDirRoot;
+
+	@Test
+	public void testReopen_sameChannelUntilReplaced() throws IOException {
+		Path vault = copyVault("vault");
+		Path otherVault = copyVault("other");
+		try (CryptoFileSystem fs = FuseCryptoFs.mountOptions(vault, PASSPHRASE).open();
+				CryptoFileSystem otherFs = FuseCryptoFs.mountOptions(otherVault, PASSPHRASE).open();
+				LayeredFileSystem layeredFs = LayeredFileSystem.layer(fs)
+						.openFileCache(OPEN_FILES, file -> Files.readAttributes(fs.getCiphertextPath(file), BasicFileAttributes.class))
+						.build()) {
+			Path file = layeredFs.getRoot().resolve(FILE_NAME);
+			String content = Files.readString(file);
+
+			// Reopened on the channel of the vault kept open
+			FileChannel kept;
+			try (FileChannel channel = FileChannel.open(file, READ)) {
+				kept = delegate(channel);
+				assertEquals(content, read(channel));
+			}
+			try (FileChannel channel = FileChannel.open(file, READ)) {
+				assertSame(kept, delegate(channel));
+				assertEquals(content, read(channel));
+			}
+
+			// Replaced outside the file system, opened in another mode first
+			String replaced = "replaced";
+			replace(fs, otherFs, replaced);
+			try (FileChannel channel = FileChannel.open(file, READ, WRITE)) {
+				assertNotSame(kept, delegate(channel));
+				assertEquals(replaced.length(), channel.size());
+				assertEquals(replaced, read(channel));
+			}
+			assertEquals(replaced, Files.readString(file));
+
+			// Replaced again, attributes read first
+			String replacedAgain = "replaced again";
+			replace(fs, otherFs, replacedAgain);
+			assertEquals(replacedAgain.length(), Files.size(file));
+			try (FileChannel channel = FileChannel.open(file, READ, WRITE)) {
+				assertEquals(replacedAgain, read(channel));
+			}
+			assertEquals(replacedAgain, Files.readString(file));
+		}
+	}
+
+	private static FileChannel delegate(FileChannel channel) {
+		return ((LayeredFileChannel) channel).getDelegate();
+	}
+
+	private static String read(FileChannel channel) throws IOException {
+		ByteBuffer content = ByteBuffer.allocate((int) channel.size());
+		while (content.hasRemaining()) {
+			if (channel.read(content, content.position()) < 0) {
+				break;
+			}
+		}
+		return new String(content.array(), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Replaces the ciphertext file of the vault by an atomic rename, the new content being encrypted by the other vault.
+	 */
+	private void replace(CryptoFileSystem fs, CryptoFileSystem otherFs, String content) throws IOException {
+		Path otherFile = otherFs.getRootDirectories().iterator().next().resolve(FILE_NAME);
+		Files.writeString(otherFile, content);
+		Path ciphertext = fs.getCiphertextPath(fs.getRootDirectories().iterator().next().resolve(FILE_NAME));
+		Path temp = ciphertext.resolveSibling("replaced.tmp");
+		Files.copy(otherFs.getCiphertextPath(otherFile), temp);
+		Files.move(temp, ciphertext, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private Path copyVault(String name) throws IOException {
+		Path source = new File(getClass().getClassLoader().getResource(VAULT_CURRENT_FORMAT).getFile()).toPath();
+		Path copy = tempDirRoot.resolve(name);
+		try (Stream<Path> tree = Files.walk(source)) {
+			for (Path path : (Iterable<Path>) tree::iterator) {
+				Files.copy(path, copy.resolve(source.relativize(path).toString()));
+			}
+		}
+		return copy;
+	}
+}
@@ -0,0 +1,96 @@
+package org.github.llbrt.cryptofssrv;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+
+import org.cryptomator.cryptofs.CryptoFileSystem;
+import org.cryptomator.cryptofs.VaultConfig;
+import org.cryptomator.cryptofs.common.Constants;
+import org.cryptomator.cryptolib.api.CryptorProvider;
+import org.cryptomator.cryptolib.api.Masterkey;
+import org.cryptomator.cryptolib.common.MasterkeyFileAccess;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.github.llbrt.cryptofs.BenchCrypto;
+import com.github.llbrt.cryptofs.Mount;
+import com.github.llbrt.cryptofs.fuse.FuseCryptoFs;
+
+import picocli.CommandLine;
+
+public class TestCipherCombo {
+
+	private static final String PASSPHRASE = "T€st-Un1t";
+
+	@TempDir
+	public Path tempDirRoot;
+
+	@Test
+	public void testNewVault_cipherCombo() throws Exception {
+		Path vaultDir = tempDirRoot.resolve("vault");
+		try (CryptoFileSystem fs = FuseCryptoFs.mountOptions(vaultDir, PASSPHRASE.toCharArray())
+				.initializeVault()
+				.cipherCombo(CryptorProvider.Scheme.SIV_GCM)
+				.open()) {
+			Files.writeString(fs.getPath("/file"), "content");
+		}
+
+		String token = Files.readString(vaultDir.resolve("vault.cryptomator"));
+		MasterkeyFileAccess masterkeyFileAccess = new MasterkeyFileAccess(new byte[0], new SecureRandom());
+		try (Masterkey masterkey = masterkeyFileAccess.load(vaultDir.resolve("masterkey.cryptomator"), PASSPHRASE)) {
+			VaultConfig config = VaultConfig.decode(token).verify(masterkey.getEncoded(), Constants.VAULT_VERSION);
+			assertEquals(CryptorProvider.Scheme.SIV_GCM, config.getCipherCombo());
+		}
+
+		// Readable again with the cipher combo of the vault
+		try (CryptoFileSystem fs = FuseCryptoFs.mountOptions(vaultDir, PASSPHRASE.toCharArray()).open()) {
+			assertEquals("content", Files.readString(fs.getPath("/file")));
+		}
+	}
+
+	@Test
+	public void testMount_cipherWithoutCreate_rejected() throws IOException {
+		Path vaultDir = Files.createDirectory(tempDirRoot.resolve("vault"));
+		Path passphraseFile = Files.writeString(tempDirRoot.resolve("pass.txt"), PASSPHRASE);
+
+		StringWriter err = new StringWriter();
+		CommandLine cmd = new CommandLine(new Mount()).setErr(new PrintWriter(err));
+		int exitCode = cmd.execute("--cipher", "SIV_GCM", "--passphrase:file", passphraseFile.toString(), vaultDir.toString());
+		assertEquals(CommandLine.ExitCode.USAGE, exitCode);
+		assertTrue(err.toString().contains("Cipher combo only set on creation"), err.toString());
+		// Nothing created
+		try (var entries = Files.list(vaultDir)) {
+			assertFalse(entries.findAny().isPresent());
+		}
+	}
+
+	@Test
+	public void testBenchCrypto_recommends() {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		PrintStream out = System.out;
+		int exitCode;
+		try {
+			System.setOut(new PrintStream(output, true, StandardCharsets.UTF_8));
+			exitCode = new CommandLine(new BenchCrypto()).execute("--megabytes", "1", "--chunks", "1", "--threads", "1");
+		} finally {
+			System.setOut(out);
+		}
+		assertEquals(0, exitCode);
+		String printed = output.toString(StandardCharsets.UTF_8);
+		for (CryptorProvider.Scheme scheme : CryptorProvider.Scheme.values()) {
+			assertTrue(printed.contains(scheme.name()), printed);
+		}
+		assertTrue(printed.contains("Recommended: --cipher "), printed);
+	}
+}
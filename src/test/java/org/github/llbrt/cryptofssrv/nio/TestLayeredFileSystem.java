@@ -0,0 +1,192 @@
+package org.github.llbrt.cryptofssrv.nio;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.github.llbrt.cryptofs.nio.LayeredFileSystem;
+
+public class TestLayeredFileSystem {
+
+	private static final int FILE_SIZE = 10 * 1024 * 1024 + 123;
+	private static final int WRITE_SIZE = 128 * 1024;
+	private static final int FSYNC_THREADS = 8;
+	private static final int FSYNC_RECORDS = 50;
+	private static final int OPEN_FILES = 2;
+
+	@TempDir
+	public Path tempDirRoot;
+
+	private LayeredFileSystem fs;
+	private Path root;
+
+	@BeforeEach
+	public void layer() {
+		fs = LayeredFileSystem.layer(FileSystems.getDefault())
+				.ioSlots(2)
+				.openFileCache(OPEN_FILES, file -> Files.readAttributes(file, BasicFileAttributes.class))
+				.build();
+		root = fs.getPath(tempDirRoot.toString());
+	}
+
+	@AfterEach
+	public void close() throws IOException {
+		fs.close();
+	}
+
+	@Test
+	public void testPaths() throws IOException {
+		Path dir = root.resolve("dir");
+		Files.createDirectory(dir);
+		Files.writeString(dir.resolve("file"), "content");
+
+		assertSame(fs, dir.getFileSystem());
+		assertEquals(root, dir.getParent());
+		assertEquals(fs.getPath("dir"), root.relativize(dir));
+		try (Stream<Path> list = Files.list(dir)) {
+			List<Path> files = list.collect(Collectors.toList());
+			assertEquals(List.of(dir.resolve("file")), files);
+			assertSame(fs, files.get(0).getFileSystem());
+		}
+		assertEquals("content", Files.readString(dir.resolve("file")));
+		assertTrue(Files.exists(tempDirRoot.resolve("dir").resolve("file")));
+
+		Files.copy(dir.resolve("file"), root.resolve("copy"));
+		assertEquals("content", Files.readString(root.resolve("copy")));
+	}
+
+	@Test
+	public void testLargeWrites_readBack() throws IOException {
+		byte[] content = new byte[FILE_SIZE];
+		new Random(FILE_SIZE).nextBytes(content);
+
+		Path file = root.resolve("large");
+		try (FileChannel channel = FileChannel.open(file, CREATE_NEW, WRITE, READ)) {
+			for (int position = 0; position < FILE_SIZE; position += WRITE_SIZE) {
+				ByteBuffer src = ByteBuffer.wrap(content, position, Math.min(WRITE_SIZE, FILE_SIZE - position));
+				assertEquals(src.remaining(), channel.write(src, position));
+				assertEquals(0, src.remaining());
+			}
+			assertEquals(FILE_SIZE, channel.size());
+		}
+
+		assertEquals(FILE_SIZE, Files.size(file));
+		assertArrayEquals(content, Files.readAllBytes(file));
+		assertArrayEquals(content, Files.readAllBytes(tempDirRoot.resolve("large")));
+	}
+
+	@Test
+	public void testLargeWrites_visibleFromPath() throws IOException {
+		byte[] content = new byte[4 * WRITE_SIZE];
+		new Random(WRITE_SIZE).nextBytes(content);
+
+		Path file = root.resolve("visible");
+		try (FileChannel channel = FileChannel.open(file, CREATE_NEW, WRITE)) {
+			channel.write(ByteBuffer.wrap(content), 0);
+			// Visible by the other channels of the file
+			assertEquals(content.length, Files.size(file));
+			assertArrayEquals(content, Files.readAllBytes(file));
+		}
+	}
+
+	@Test
+	public void testConcurrentFsync() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(FSYNC_THREADS);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < FSYNC_THREADS; t++) {
+				Path log = root.resolve("log-" + t);
+				futures.add(executor.submit(() -> {
+					try (FileChannel channel = FileChannel.open(log, CREATE_NEW, WRITE, APPEND)) {
+						for (int r = 0; r < FSYNC_RECORDS; r++) {
+							channel.write(ByteBuffer.wrap(("record " + r + "\n").getBytes(StandardCharsets.UTF_8)));
+							channel.force(false);
+						}
+					}
+					return null;
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		for (int t = 0; t < FSYNC_THREADS; t++) {
+			List<String> records = Files.readAllLines(root.resolve("log-" + t));
+			assertEquals(FSYNC_RECORDS, records.size());
+			assertEquals("record " + (FSYNC_RECORDS - 1), records.get(FSYNC_RECORDS - 1));
+		}
+	}
+
+	@Test
+	public void testReopen() throws IOException {
+		Path file = root.resolve("reopened");
+		Files.writeString(file, "first");
+		for (int i = 0; i < 3; i++) {
+			assertEquals("first", Files.readString(file));
+		}
+
+		// Changed outside the file system
+		Files.writeString(tempDirRoot.resolve("reopened"), "second content");
+		assertEquals("second content", Files.readString(file));
+
+		// Moved then deleted
+		Path moved = root.resolve("moved");
+		Files.move(file, moved);
+		assertEquals("second content", Files.readString(moved));
+		Files.delete(moved);
+		Files.writeString(moved, "third");
+		assertEquals("third", Files.readString(moved));
+
+		// Rotated while open, then replaced
+		Path log = root.resolve("app.log");
+		Files.writeString(log, "OLD ROTATED CONTENT");
+		try (FileChannel reader = FileChannel.open(log, READ)) {
+			Files.move(log, root.resolve("app.log.1"));
+			Files.writeString(log, "new");
+			assertEquals("OLD ROTATED CONTENT".length(), reader.size());
+		}
+		assertEquals("new", Files.readString(log));
+		assertEquals("OLD ROTATED CONTENT", Files.readString(root.resolve("app.log.1")));
+
+		// More files than the limit
+		for (int i = 0; i < 2 * OPEN_FILES; i++) {
+			Files.writeString(root.resolve("file-" + i), "file " + i);
+		}
+		for (int j = 0; j < 2; j++) {
+			for (int i = 0; i < 2 * OPEN_FILES; i++) {
+				assertEquals("file " + i, Files.readString(root.resolve("file-" + i)));
+			}
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package org.github.llbrt.cryptofssrv.stats;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.cryptomator.cryptofs.CryptoFileSystem;
+import org.cryptomator.cryptolib.api.Cryptor;
+import org.cryptomator.cryptolib.api.Masterkey;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.github.llbrt.cryptofs.fuse.FuseCryptoFs;
+import com.github.llbrt.cryptofs.fuse.FuseCryptoFs.MountOptions;
+import com.github.llbrt.cryptofs.stats.VaultUsage;
+import com.github.llbrt.cryptofs.stats.VaultUsage.Usage;
+
+public class TestVaultUsage {
+
+	private static final char[] PASSPHRASE = "T€st-Un1t".toCharArray();
+	private static final String VAULT_CURRENT_FORMAT = "vault-v8";
+	private static final String LONG_NAME = "long-".repeat(40);
+
+	@TempDir
+	public Path tempDirRoot;
+
+	@Test
+	public void testUsage_matchesCleartext() throws IOException {
+		Path vault = copyVault();
+		// Directory with a shortened ciphertext name
+		try (CryptoFileSystem fs = FuseCryptoFs.mountOptions(vault, PASSPHRASE).open()) {
+			Path longDir = fs.getRootDirectories().iterator().next().resolve(LONG_NAME);
+			Files.createDirectories(longDir.resolve("sub"));
+			Files.writeString(longDir.resolve("sub").resolve("file"), "content");
+		}
+
+		MountOptions options = FuseCryptoFs.mountOptions(vault, PASSPHRASE).readOnly();
+		try (Masterkey masterkey = options.loadMasterkey();
+				CryptoFileSystem fs = options.open(masterkey);
+				Cryptor cryptor = options.openCryptor(masterkey)) {
+			for (int depth = 0; depth < 3; depth++) {
+				checkUsage(new VaultUsage(fs, cryptor, depth).compute(2), depth);
+			}
+		}
+	}
+
+	// The usage of each reported directory is the one of its cleartext tree
+	private void checkUsage(Usage usage, int depth) throws IOException {
+		long size = 0;
+		long files = 0;
+		long directories = 0;
+		try (Stream<Path> tree = Files.walk(usage.path())) {
+			for (Path path : (Iterable<Path>) tree::iterator) {
+				if (Files.isRegularFile(path)) {
+					size += Files.size(path);
+					files++;
+				} else if (Files.isDirectory(path) && !path.equals(usage.path())) {
+					directories++;
+				}
+			}
+		}
+		assertEquals(size, usage.size(), usage.path().toString());
+		assertEquals(files, usage.files(), usage.path().toString());
+		assertEquals(directories, usage.directories(), usage.path().toString());
+		assertTrue(usage.ciphertextSize() > usage.size() || files == 0);
+
+		if (depth == 0) {
+			assertEquals(List.of(), usage.children());
+			return;
+		}
+		try (Stream<Path> list = Files.list(usage.path())) {
+			assertEquals(list.filter(Files::isDirectory).count(), usage.children().size());
+		}
+		for (Usage child : usage.children()) {
+			checkUsage(child, depth - 1);
+		}
+	}
+
+	private Path copyVault() throws IOException {
+		Path source = new File(getClass().getClassLoader().getResource(VAULT_CURRENT_FORMAT).getFile()).toPath();
+		Path copy = tempDirRoot.resolve(VAULT_CURRENT_FORMAT);
+		try (Stream<Path> tree = Files.walk(source)) {
+			for (Path path : (Iterable<Path>) tree::iterator) {
+				Files.copy(path, copy.resolve(source.relativize(path).toString()));
+			}
+		}
+		return copy;
+	}
+}